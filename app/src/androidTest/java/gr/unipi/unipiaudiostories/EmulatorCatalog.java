@@ -0,0 +1,92 @@
+package gr.unipi.unipiaudiostories;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Συνθετικός κατάλογος για τον Realtime Database emulator.
+ * Γράφεται με το REST API του emulator ως "owner", ώστε να παρακάμπτει τους κανόνες.
+ */
+final class EmulatorCatalog {
+
+    static final int STORY_COUNT = 100;
+    static final int SEGMENT_COUNT = 10;
+
+    static final String LONG_STORY_ID = "story_long";
+
+    private static final String SENTENCE =
+            "The little fox ran across the silent field while the moon watched from above. ";
+
+    private EmulatorCatalog() { }
+
+    static String storyId(int i) {
+        return String.format(Locale.US, "story_%03d", i);
+    }
+
+    /** Κείμενο ~length χαρακτήρων από επαναλαμβανόμενες προτάσεις. */
+    static String body(int length) {
+        StringBuilder sb = new StringBuilder(length + SENTENCE.length());
+        while (sb.length() < length) sb.append(SENTENCE);
+        return sb.toString().trim();
+    }
+
+    static void seed(String host, int port) throws IOException, JSONException {
+        JSONObject stories = new JSONObject();
+        for (int i = 0; i < STORY_COUNT; i++) {
+            JSONObject s = new JSONObject();
+            s.put("title", "Story " + i);
+            s.put("author", "Author " + (i % 10));
+            s.put("year", 1900 + i);
+            s.put("listens", i % 7);
+            s.put("text", body(2000));
+            stories.put(storyId(i), s);
+        }
+
+        JSONObject longStory = new JSONObject();
+        longStory.put("title", "A Very Long Story");
+        longStory.put("author", "Author 0");
+        longStory.put("year", 2000);
+        longStory.put("segmentCount", SEGMENT_COUNT);
+        stories.put(LONG_STORY_ID, longStory);
+
+        JSONObject segments = new JSONObject();
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments.put(String.valueOf(i), body(4000));
+        }
+        JSONObject storySegments = new JSONObject();
+        storySegments.put(LONG_STORY_ID, segments);
+
+        JSONObject root = new JSONObject();
+        root.put("stories", stories);
+        root.put("storySegments", storySegments);
+
+        put(host, port, root.toString());
+    }
+
+    private static void put(String host, int port, String json) throws IOException {
+        URL url = new URL("http://" + host + ":" + port + "/.json?ns=" + StoryRepository.RTDB_INSTANCE);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            conn.setRequestMethod("PUT");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Authorization", "Bearer owner");
+            conn.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Seeding emulator failed: HTTP " + code);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
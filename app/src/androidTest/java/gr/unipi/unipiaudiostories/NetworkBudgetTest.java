@@ -0,0 +1,226 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.TrafficStats;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.WorkManager;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Μετράει bytes και reads ανά "διαδρομή" χρήστη απέναντι στον Firebase emulator
+ * και αποτυγχάνει όταν μια αλλαγή ξεπερνάει το budget.
+ *
+ * Τρέχει με: firebase emulators:start --only database,auth
+ * και μετά ./gradlew connectedAndroidTest. Τα budgets αλλάζουν με
+ * -Pandroid.testInstrumentationRunnerArguments.budgetCatalogBytes=... κ.λπ.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NetworkBudgetTest {
+
+    private static final int DATABASE_PORT = 9000;
+    private static final int AUTH_PORT = 9099;
+    private static final long TIMEOUT_MS = 15_000;
+
+    private static Bundle args;
+
+    private Context context;
+    private StoryRepository repository;
+
+    @BeforeClass
+    public static void setUpEmulator() throws Exception {
+        args = InstrumentationRegistry.getArguments();
+        String host = args.getString("emulatorHost", "10.0.2.2");
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        // Ο prefetch worker θα χαλούσε τις μετρήσεις με δική του κίνηση. Ακυρώνουμε και
+        // ό,τι έχει μείνει αποθηκευμένο στο WorkManager από προηγούμενη εκτέλεση της εφαρμογής,
+        // πριν προλάβει να ανοίξει τη βάση χωρίς emulator
+        StoryPrefetcher.setEnabled(false);
+        WorkManager.getInstance(ctx).cancelUniqueWork(StoryPrefetcher.WORK_NAME)
+                .getResult().get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        StoryRepository.useEmulator(host, DATABASE_PORT);
+        FirebaseAuth.getInstance().useEmulator(host, AUTH_PORT);
+
+        EmulatorCatalog.seed(host, DATABASE_PORT);
+        Tasks.await(FirebaseAuth.getInstance().signInAnonymously(), TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        PrefetchCache.retainOnly(ctx, Collections.emptySet());
+
+        // Ανοίγουμε τη σύνδεση από πριν, για να μη μετράει το handshake σε κάποια διαδρομή
+        Tasks.await(StoryRepository.get(ctx).storiesRef().child("__warmup").get(),
+                TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repository = StoryRepository.get(context);
+        repository.clearMemory();
+    }
+
+    @Test
+    public void catalogFirstPage_staysWithinBudget() {
+        Measurement m = new Measurement();
+
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            waitUntil(() -> catalogSize(scenario) >= CatalogViewModel.PAGE_SIZE);
+            settle();
+
+            // Μόνο η πρώτη σελίδα, όχι όλος ο κατάλογος
+            assertEquals(CatalogViewModel.PAGE_SIZE, catalogSize(scenario));
+            m.assertWithin("catalog", budget("budgetCatalogReads", 1), budget("budgetCatalogBytes", 64 * 1024));
+        }
+    }
+
+    @Test
+    public void coldStoryOpen_staysWithinBudget() {
+        Measurement m = new Measurement();
+
+        try (ActivityScenario<StoryActivity> scenario = launchStory(EmulatorCatalog.storyId(50))) {
+            waitUntil(() -> hasText(scenario));
+            settle();
+
+            m.assertWithin("cold story", budget("budgetStoryReads", 1), budget("budgetStoryBytes", 8 * 1024));
+        }
+    }
+
+    @Test
+    public void storyFromCatalog_opensWithoutNetworkReads() {
+        try (ActivityScenario<MainActivity> catalog = ActivityScenario.launch(MainActivity.class)) {
+            waitUntil(() -> catalogSize(catalog) >= CatalogViewModel.PAGE_SIZE);
+            settle();
+
+            int readsBefore = repository.getNetworkReads();
+            try (ActivityScenario<StoryActivity> story = launchStory(EmulatorCatalog.storyId(0))) {
+                waitUntil(() -> hasText(story));
+                settle();
+            }
+
+            // Το κείμενο ήρθε με τον κατάλογο, άρα το άνοιγμα είναι μόνο από τη μνήμη
+            assertEquals(0, repository.getNetworkReads() - readsBefore);
+        }
+    }
+
+    @Test
+    public void segmentedStory_downloadsOnlyLookahead() {
+        Measurement m = new Measurement();
+
+        try (ActivityScenario<StoryActivity> scenario = launchStory(EmulatorCatalog.LONG_STORY_ID)) {
+            waitUntil(() -> hasText(scenario));
+            settle();
+
+            // Η ιστορία + το πρώτο τμήμα + όσα τμήματα επιτρέπει το look-ahead
+            int expectedReads = 1 + 1 + StoryViewModel.SEGMENT_LOOKAHEAD;
+            m.assertWithin("segmented story",
+                    budget("budgetSegmentedReads", expectedReads),
+                    budget("budgetSegmentedBytes", 20 * 1024));
+        }
+    }
+
+    // --- Helpers ---
+
+    /**
+     * Διαφορά σε reads / bytes από τη στιγμή που δημιουργείται.
+     * Μόνο οι διαδρομές που μετράνε bytes χρειάζονται TrafficStats ανά uid.
+     */
+    private class Measurement {
+        private final int reads = repository.getNetworkReads();
+        private final long bytes = uidBytes();
+
+        Measurement() {
+            assumeTrue("TrafficStats not supported", bytes != TrafficStats.UNSUPPORTED);
+        }
+
+        void assertWithin(String journey, int maxReads, int maxBytes) {
+            int usedReads = repository.getNetworkReads() - reads;
+            long usedBytes = uidBytes() - bytes;
+
+            assertTrue(journey + ": " + usedReads + " reads > budget " + maxReads,
+                    usedReads <= maxReads);
+            assertTrue(journey + ": " + usedBytes + " bytes > budget " + maxBytes,
+                    usedBytes <= maxBytes);
+        }
+    }
+
+    private ActivityScenario<StoryActivity> launchStory(String storyId) {
+        Intent i = new Intent(context, StoryActivity.class);
+        i.putExtra("storyId", storyId);
+        i.putExtra("userId", "budget_test");
+        return ActivityScenario.launch(i);
+    }
+
+    private static int catalogSize(ActivityScenario<MainActivity> scenario) {
+        int[] size = new int[1];
+        scenario.onActivity(a -> {
+            RecyclerView rv = a.findViewById(R.id.recyclerStories);
+            size[0] = rv.getAdapter() == null ? 0 : rv.getAdapter().getItemCount();
+        });
+        return size[0];
+    }
+
+    private static boolean hasText(ActivityScenario<StoryActivity> scenario) {
+        AtomicBoolean result = new AtomicBoolean();
+        scenario.onActivity(a -> {
+            TextView tv = a.findViewById(R.id.tvText);
+            result.set(tv.getText() != null && tv.getText().length() > 0);
+        });
+        return result.get();
+    }
+
+    private static long uidBytes() {
+        int uid = Process.myUid();
+        long rx = TrafficStats.getUidRxBytes(uid);
+        long tx = TrafficStats.getUidTxBytes(uid);
+        if (rx == TrafficStats.UNSUPPORTED || tx == TrafficStats.UNSUPPORTED) {
+            return TrafficStats.UNSUPPORTED;
+        }
+        return rx + tx;
+    }
+
+    private static int budget(String key, int defaultValue) {
+        String value = args.getString(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (SystemClock.uptimeMillis() > deadline) fail("Timed out waiting for journey to finish");
+            SystemClock.sleep(100);
+        }
+    }
+
+    /** Αφήνει τα τελευταία fetch (π.χ. look-ahead τμημάτων) να ολοκληρωθούν πριν μετρήσουμε. */
+    private void settle() {
+        int last;
+        do {
+            last = repository.getNetworkReads();
+            SystemClock.sleep(1000);
+        } while (repository.getNetworkReads() != last);
+    }
+}
@@ -0,0 +1,76 @@
+package gr.unipi.unipiaudiostories;
+
+import java.io.Serializable;
+
+/**
+ * Ταξινόμηση / φίλτρο του καταλόγου, όπως θα το εκτελέσει η Realtime Database
+ * με orderByChild (κάθε πεδίο έχει .indexOn στο database.rules.json).
+ * Το φίλτρο είναι ισότητα στο ίδιο πεδίο με την ταξινόμηση, γιατί η RTDB
+ * υποστηρίζει μόνο ένα orderBy ανά query.
+ * Περνάει και στο StoryActivity (Intent extra), ώστε το autoplay να συνεχίζει στις επόμενες σελίδες.
+ */
+public final class CatalogQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String FIELD_TITLE = "title";
+    public static final String FIELD_AUTHOR = "author";
+    public static final String FIELD_YEAR = "year";
+    public static final String FIELD_LISTENS = "listens";
+
+    // Προεπιλογή: η σειρά των κλειδιών, όπως έδειχνε πάντα το grid
+    public static final CatalogQuery DEFAULT = new CatalogQuery(null, false, null);
+
+    /** null = σειρά κλειδιών. */
+    public final String field;
+    public final boolean descending;
+    /** Αν δεν είναι null, μόνο ιστορίες με field == filterValue. */
+    public final Object filterValue;
+
+    private CatalogQuery(String field, boolean descending, Object filterValue) {
+        this.field = field;
+        this.descending = descending;
+        this.filterValue = filterValue;
+    }
+
+    public static CatalogQuery byTitle() {
+        return new CatalogQuery(FIELD_TITLE, false, null);
+    }
+
+    public static CatalogQuery byAuthor() {
+        return new CatalogQuery(FIELD_AUTHOR, false, null);
+    }
+
+    /** Οι νεότερες πρώτα. */
+    public static CatalogQuery byYear() {
+        return new CatalogQuery(FIELD_YEAR, true, null);
+    }
+
+    /** Οι πιο ακουσμένες πρώτα. */
+    public static CatalogQuery byPopularity() {
+        return new CatalogQuery(FIELD_LISTENS, true, null);
+    }
+
+    public static CatalogQuery authorIs(String author) {
+        return new CatalogQuery(FIELD_AUTHOR, false, author);
+    }
+
+    public static CatalogQuery yearIs(int year) {
+        return new CatalogQuery(FIELD_YEAR, false, year);
+    }
+
+    /**
+     * Η τιμή του πεδίου ταξινόμησης για μια ιστορία, όπως τη βλέπει η βάση.
+     * Το year == 0 σημαίνει ότι λείπει (έτσι το δείχνει και το StoryActivity), άρα null.
+     */
+    Object valueOf(Story story) {
+        if (field == null) return null;
+        switch (field) {
+            case FIELD_TITLE: return story.title;
+            case FIELD_AUTHOR: return story.author;
+            case FIELD_YEAR: return story.year > 0 ? story.year : null;
+            case FIELD_LISTENS: return story.listens;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package gr.unipi.unipiaudiostories;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Κρατάει τον κατάλογο του MainActivity, ώστε αλλαγή γλώσσας ή περιστροφή
+ * να μην ξανακατεβάζουν τις ιστορίες. Ο κατάλογος έρχεται σε σελίδες,
+ * ταξινομημένες / φιλτραρισμένες στον server σύμφωνα με το τρέχον {@link CatalogQuery}.
+ */
+public class CatalogViewModel extends AndroidViewModel {
+
+    static final int PAGE_SIZE = 20;
+
+    private final MutableLiveData<List<Story>> stories = new MutableLiveData<>(new ArrayList<>());
+    private final MutableLiveData<Boolean> loading = new MutableLiveData<>(false);
+    private final MutableLiveData<String> message = new MutableLiveData<>();
+
+    private CatalogQuery query = CatalogQuery.DEFAULT;
+    private final List<Story> loaded = new ArrayList<>();
+    private boolean started = false;
+    private boolean endReached = false;
+    private boolean prefetchScheduled = false;
+    // Αυξάνεται σε κάθε αλλαγή query, για να αγνοούνται σελίδες που άργησαν
+    private int generation = 0;
+
+    private String userId;
+
+    public CatalogViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    public LiveData<List<Story>> getStories() {
+        return stories;
+    }
+
+    public LiveData<Boolean> isLoading() {
+        return loading;
+    }
+
+    public LiveData<String> getMessage() {
+        return message;
+    }
+
+    public void consumeMessage() {
+        message.setValue(null);
+    }
+
+    public CatalogQuery getQuery() {
+        return query;
+    }
+
+    /** Κατεβάζει την πρώτη σελίδα μόνο αν δεν την έχουμε ήδη. */
+    public void loadIfNeeded(String userId) {
+        this.userId = userId;
+        if (started) return;
+        started = true;
+        loadPage();
+    }
+
+    /** Νέα ταξινόμηση / φίλτρο: ξεκινάμε από την αρχή. */
+    public void setQuery(CatalogQuery newQuery) {
+        query = newQuery;
+        generation++;
+        loaded.clear();
+        endReached = false;
+        loading.setValue(false);
+        stories.setValue(new ArrayList<>());
+        started = true;
+        loadPage();
+    }
+
+    /** Καλείται όταν ο χρήστης φτάνει κοντά στο τέλος της λίστας. */
+    public void loadNextPage() {
+        if (!started || endReached) return;
+        loadPage();
+    }
+
+    private void loadPage() {
+        if (Boolean.TRUE.equals(loading.getValue())) return;
+        loading.setValue(true);
+
+        int requestGeneration = generation;
+        Story after = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1);
+
+        StoryRepository.get(getApplication()).loadCatalogPage(query, after, PAGE_SIZE,
+                new StoryRepository.CatalogCallback() {
+                    @Override
+                    public void onCatalog(List<Story> page) {
+                        if (requestGeneration != generation) return;
+
+                        loaded.addAll(page);
+                        endReached = page.size() < PAGE_SIZE;
+                        stories.setValue(new ArrayList<>(loaded));
+                        loading.setValue(false);
+
+                        // Background κατέβασμα των ιστοριών που πιθανότατα θα ανοίξει μετά
+                        if (!prefetchScheduled && after == null) {
+                            prefetchScheduled = true;
+                            StoryPrefetcher.schedule(getApplication(), page, userId);
+                        }
+
+                        if (loaded.isEmpty()) message.setValue("No stories found.");
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        if (requestGeneration != generation) return;
+                        loading.setValue(false);
+                        message.setValue("Error: " + error);
+                    }
+                });
+    }
+}
@@ -2,37 +2,35 @@ package gr.unipi.unipiaudiostories;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.InputType;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.core.os.LocaleListCompat;
 import androidx.appcompat.app.AlertDialog;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final String RTDB_URL =
-            "https://unipiaudiostories-f7609-default-rtdb.europe-west1.firebasedatabase.app";
-
     private RecyclerView recyclerStories;
-    private MaterialButton btnLanguage, btnStats, btnLogout;
+    private MaterialButton btnLanguage, btnSort, btnStats, btnLogout;
 
     private final List<Story> storyList = new ArrayList<>();
     private StoryAdapter adapter;
+    private CatalogViewModel viewModel;
 
     // Μεταβλητή για το ID του τρέχοντος χρήστη
     private String currentUserId;
@@ -55,20 +53,43 @@ public class MainActivity extends AppCompatActivity {
         // 2) Bind views
         recyclerStories = findViewById(R.id.recyclerStories);
         btnLanguage = findViewById(R.id.btnLanguage);
+        btnSort = findViewById(R.id.btnSort);
         btnStats = findViewById(R.id.btnStats);
         btnLogout = findViewById(R.id.btnLogout);
 
         // 3) Recycler setup (Grid 2 columns)
-        recyclerStories.setLayoutManager(new GridLayoutManager(this, 2));
+        GridLayoutManager layoutManager = new GridLayoutManager(this, 2);
+        recyclerStories.setLayoutManager(layoutManager);
         adapter = new StoryAdapter(this, storyList, story -> {
             // Όταν επιλέγεται μια ιστορία, στέλνουμε το storyId ΚΑΙ το userId
             Intent i = new Intent(MainActivity.this, StoryActivity.class);
             i.putExtra("storyId", story.id);
             i.putExtra("userId", currentUserId);
+            // Ουρά για autoplay: οι ιστορίες με τη σειρά που τις βλέπει ο χρήστης
+            ArrayList<String> queue = new ArrayList<>();
+            for (Story s : storyList) queue.add(s.id);
+            i.putStringArrayListExtra("queue", queue);
+            // Με το query και τον cursor (τιμή ταξινόμησης της τελευταίας) η ουρά συνεχίζει
+            // και πέρα από τις σελίδες που έχουν φορτωθεί εδώ
+            CatalogQuery query = viewModel.getQuery();
+            i.putExtra("catalogQuery", query);
+            if (!storyList.isEmpty()) {
+                i.putExtra("queueCursor", (Serializable) query.valueOf(storyList.get(storyList.size() - 1)));
+            }
             startActivity(i);
         });
         recyclerStories.setAdapter(adapter);
 
+        // Paging: όταν πλησιάζουμε στο τέλος, ζητάμε την επόμενη σελίδα
+        recyclerStories.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy <= 0) return;
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - 4) viewModel.loadNextPage();
+            }
+        });
+
         // 4) Button Listeners
 
         // Επιλογή Γλώσσας
@@ -85,6 +106,9 @@ public class MainActivity extends AppCompatActivity {
             builder.show();
         });
 
+        // Ταξινόμηση / φίλτρο (εκτελούνται στον server)
+        btnSort.setOnClickListener(v -> showSortDialog());
+
         // Προβολή Στατιστικών
         btnStats.setOnClickListener(v -> {
             Intent i = new Intent(MainActivity.this, StatsActivity.class);
@@ -102,8 +126,61 @@ public class MainActivity extends AppCompatActivity {
             finish();
         });
 
-        // 5) Φόρτωση ιστοριών από Firebase
-        loadStories();
+        // 5) Φόρτωση ιστοριών από Firebase· ο κατάλογος ζει στο ViewModel,
+        // οπότε η αλλαγή γλώσσας (recreate) δεν κάνει νέο fetch
+        viewModel = new ViewModelProvider(this).get(CatalogViewModel.class);
+        observeCatalog();
+        viewModel.loadIfNeeded(currentUserId);
+    }
+
+    private void showSortDialog() {
+        String[] options = {
+                getString(R.string.sort_default),
+                getString(R.string.sort_title),
+                getString(R.string.sort_author),
+                getString(R.string.sort_year),
+                getString(R.string.sort_popular),
+                getString(R.string.filter_author),
+                getString(R.string.filter_year)
+        };
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        builder.setTitle(getString(R.string.sort_filter));
+        builder.setItems(options, (dialog, which) -> {
+            if (which == 0) viewModel.setQuery(CatalogQuery.DEFAULT);
+            else if (which == 1) viewModel.setQuery(CatalogQuery.byTitle());
+            else if (which == 2) viewModel.setQuery(CatalogQuery.byAuthor());
+            else if (which == 3) viewModel.setQuery(CatalogQuery.byYear());
+            else if (which == 4) viewModel.setQuery(CatalogQuery.byPopularity());
+            else if (which == 5) showFilterInput(false);
+            else if (which == 6) showFilterInput(true);
+        });
+        builder.show();
+    }
+
+    private void showFilterInput(boolean byYear) {
+        EditText input = new EditText(this);
+        input.setInputType(byYear ? InputType.TYPE_CLASS_NUMBER : InputType.TYPE_CLASS_TEXT);
+
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle(getString(byYear ? R.string.filter_year : R.string.filter_author))
+                .setView(input)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    String value = input.getText().toString().trim();
+                    if (value.isEmpty()) return;
+
+                    if (!byYear) {
+                        viewModel.setQuery(CatalogQuery.authorIs(value));
+                        return;
+                    }
+                    try {
+                        viewModel.setQuery(CatalogQuery.yearIs(Integer.parseInt(value)));
+                    } catch (NumberFormatException e) {
+                        Toast.makeText(this, "Invalid year", Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
     }
 
     private void setAppLocale(String languageCode) {
@@ -112,41 +189,28 @@ public class MainActivity extends AppCompatActivity {
         // Το UI θα ανανεωθεί αυτόματα με τα κείμενα από τα strings.xml
     }
 
-    private void loadStories() {
-        setUiEnabled(false);
-        FirebaseDatabase db = FirebaseDatabase.getInstance(RTDB_URL);
-
-        db.getReference("stories")
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        storyList.clear();
-                        for (DataSnapshot s : snapshot.getChildren()) {
-                            Story story = s.getValue(Story.class);
-                            if (story == null) continue;
-
-                            story.id = s.getKey();
-                            storyList.add(story);
-                        }
-                        adapter.notifyDataSetChanged();
-                        setUiEnabled(true);
-
-                        if (storyList.isEmpty()) {
-                            Toast.makeText(MainActivity.this, "No stories found.", Toast.LENGTH_LONG).show();
-                        }
-                    }
+    private void observeCatalog() {
+        viewModel.getStories().observe(this, stories -> {
+            storyList.clear();
+            storyList.addAll(stories);
+            adapter.notifyDataSetChanged();
+        });
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        setUiEnabled(true);
-                        Toast.makeText(MainActivity.this, "Error: " + error.getMessage(), Toast.LENGTH_LONG).show();
-                    }
-                });
+        // Κρύβουμε τη λίστα μόνο στην πρώτη σελίδα, όχι όσο έρχονται οι επόμενες
+        viewModel.isLoading().observe(this, loading ->
+                setUiEnabled(!loading || !storyList.isEmpty()));
+
+        viewModel.getMessage().observe(this, message -> {
+            if (message == null) return;
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            viewModel.consumeMessage();
+        });
     }
 
     private void setUiEnabled(boolean enabled) {
         recyclerStories.setVisibility(enabled ? View.VISIBLE : View.INVISIBLE);
         btnLanguage.setEnabled(enabled);
+        btnSort.setEnabled(enabled);
         btnStats.setEnabled(enabled);
         btnLogout.setEnabled(enabled);
     }
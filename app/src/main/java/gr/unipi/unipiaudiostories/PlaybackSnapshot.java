@@ -0,0 +1,46 @@
+package gr.unipi.unipiaudiostories;
+
+/**
+ * Αμετάβλητη εικόνα της κατάστασης του {@link StoryPlayer}, όπως τη βλέπει το UI.
+ * Δημιουργείται στο thread της αναπαραγωγής και περνάει στο main thread μέσω LiveData.
+ */
+public final class PlaybackSnapshot {
+
+    public enum State {
+        /** Δεν παίζει (στην αρχή ή μετά το stop). */
+        IDLE,
+        PLAYING,
+        PAUSED,
+        /** Παίζει, αλλά περιμένει το επόμενο τμήμα της ιστορίας από το δίκτυο. */
+        WAITING,
+        /** Η αφήγηση έφτασε μόνη της στο τέλος (όχι με stop). */
+        ENDED
+    }
+
+    public static final PlaybackSnapshot INITIAL =
+            new PlaybackSnapshot(State.IDLE, false, 0, 0, false);
+
+    public final State state;
+    public final boolean ttsReady;
+    public final int index;
+    public final int total;
+    /** true όσο έρχονται ακόμα chunks (ιστορία σε τμήματα). */
+    public final boolean expectingMore;
+
+    PlaybackSnapshot(State state, boolean ttsReady, int index, int total, boolean expectingMore) {
+        this.state = state;
+        this.ttsReady = ttsReady;
+        this.index = index;
+        this.total = total;
+        this.expectingMore = expectingMore;
+    }
+
+    /** Αν το κουμπί πρέπει να δείχνει ⏸. */
+    public boolean isActive() {
+        return state == State.PLAYING || state == State.WAITING;
+    }
+
+    public boolean canControl() {
+        return ttsReady && total > 0;
+    }
+}
@@ -0,0 +1,145 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Μικρή cache στον δίσκο για ιστορίες που κατέβηκαν από τον {@link StoryPrefetchWorker}.
+ * Κάθε ιστορία αποθηκεύεται σε ένα αρχείο JSON με όνομα το storyId και, για
+ * ιστορίες σε τμήματα, το πρώτο τμήμα σε αρχείο "storyId.seg0".
+ */
+public final class PrefetchCache {
+
+    // Μετά από μία μέρα θεωρούμε το αντίγραφο παλιό και ξαναπάμε στο δίκτυο
+    static final long MAX_AGE_MS = 24L * 60 * 60 * 1000;
+
+    private static final String DIR_NAME = "prefetched_stories";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private PrefetchCache() { }
+
+    /** Επιστρέφει την ιστορία αν υπάρχει φρέσκο αντίγραφο, αλλιώς null. */
+    public static Story read(Context context, String storyId) {
+        File f = fileFor(context, storyId);
+        if (!f.exists()) return null;
+        if (System.currentTimeMillis() - f.lastModified() > MAX_AGE_MS) return null;
+
+        try {
+            JSONObject o = new JSONObject(readFile(f));
+
+            Story story = new Story();
+            story.id = storyId;
+            story.title = o.optString("title", null);
+            story.author = o.optString("author", null);
+            story.year = o.optInt("year", 0);
+            story.imageUrl = o.optString("imageUrl", null);
+            story.text = o.optString("text", null);
+            story.segmentCount = o.optInt("segmentCount", 0);
+            // Χρειάζεται ως cursor στην ταξινόμηση κατά δημοτικότητα
+            story.listens = o.has("listens") ? o.getLong("listens") : null;
+            return story;
+        } catch (IOException | JSONException e) {
+            // Χαλασμένο αρχείο: το σβήνουμε και αφήνουμε το δίκτυο να το ξαναφέρει
+            f.delete();
+            return null;
+        }
+    }
+
+    public static boolean isFresh(Context context, String storyId) {
+        File f = fileFor(context, storyId);
+        return f.exists() && System.currentTimeMillis() - f.lastModified() <= MAX_AGE_MS;
+    }
+
+    public static void write(Context context, Story story) throws IOException {
+        JSONObject o = new JSONObject();
+        try {
+            o.put("title", story.title);
+            o.put("author", story.author);
+            o.put("year", story.year);
+            o.put("imageUrl", story.imageUrl);
+            o.put("text", story.text);
+            o.put("segmentCount", story.segmentCount);
+            if (story.listens != null) o.put("listens", story.listens);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        writeFile(fileFor(context, story.id), o.toString());
+    }
+
+    public static String readSegment(Context context, String storyId, int index) {
+        File f = new File(dir(context), storyId + SEGMENT_SUFFIX + index);
+        if (!f.exists()) return null;
+        if (System.currentTimeMillis() - f.lastModified() > MAX_AGE_MS) return null;
+
+        try {
+            return readFile(f);
+        } catch (IOException e) {
+            f.delete();
+            return null;
+        }
+    }
+
+    public static void writeSegment(Context context, String storyId, int index, String text)
+            throws IOException {
+        writeFile(new File(dir(context), storyId + SEGMENT_SUFFIX + index), text);
+    }
+
+    /** Σβήνει ό,τι δεν ανήκει πλέον στις υποψήφιες ιστορίες, για να μη μεγαλώνει η cache. */
+    public static void retainOnly(Context context, Set<String> storyIds) {
+        File[] files = dir(context).listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String name = f.getName();
+            int seg = name.indexOf(SEGMENT_SUFFIX);
+            String storyId = seg >= 0 ? name.substring(0, seg) : name;
+            if (!storyIds.contains(storyId)) f.delete();
+        }
+    }
+
+    private static String readFile(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] bytes = new byte[(int) f.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            return new String(bytes, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Γράφουμε σε προσωρινό αρχείο και μετά rename, ώστε να μη διαβαστεί ποτέ μισό αρχείο
+    private static void writeFile(File target, String content) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not write " + target);
+        }
+    }
+
+    private static File fileFor(Context context, String storyId) {
+        return new File(dir(context), storyId);
+    }
+
+    private static File dir(Context context) {
+        File d = new File(context.getCacheDir(), DIR_NAME);
+        if (!d.exists()) d.mkdirs();
+        return d;
+    }
+}
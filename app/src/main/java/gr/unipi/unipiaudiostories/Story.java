@@ -7,6 +7,10 @@ public class Story {
     public int year;
     public String imageUrl;
     public String text;
+    // > 0 όταν το κείμενο είναι σπασμένο σε storySegments/<id>/0..segmentCount-1 αντί για text
+    public int segmentCount;
+    // Συνολικές ακροάσεις όλων των χρηστών (null αν δεν την έχει ακούσει κανείς ακόμα)
+    public Long listens;
 
     public Story() {
         // required for Firebase
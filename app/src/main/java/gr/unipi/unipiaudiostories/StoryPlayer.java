@@ -0,0 +1,320 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Η μηχανή αφήγησης (TTS + chunks + θέση) ως state machine.
+ * Κάθε ενέργεια (κλικ, callback του TTS, νέα chunks) γίνεται event στην ουρά ενός
+ * δικού της HandlerThread, οπότε όλη η κατάσταση αλλάζει σε ένα μόνο thread, με τη σειρά.
+ * Το UI βλέπει μόνο αμετάβλητα {@link PlaybackSnapshot} μέσω LiveData.
+ * Ζει μέσα στο {@link StoryViewModel} με το application context, οπότε
+ * περιστροφή ή αλλαγή γλώσσας δεν κάνουν restart στο TTS ούτε χάνεται η θέση.
+ */
+public class StoryPlayer {
+
+    // Events
+    private static final int MSG_TTS_INIT = 1;
+    private static final int MSG_UTTERANCE_DONE = 2;
+    private static final int MSG_UTTERANCE_ERROR = 3;
+    private static final int MSG_SET_CHUNKS = 4;
+    private static final int MSG_APPEND_CHUNKS = 5;
+    private static final int MSG_EXPECTING_MORE = 6;
+    private static final int MSG_TOGGLE = 7;
+    private static final int MSG_NEXT = 8;
+    private static final int MSG_PREV = 9;
+    private static final int MSG_PAUSE = 10;
+    private static final int MSG_STOP = 11;
+    private static final int MSG_SHUTDOWN = 12;
+    private static final int MSG_PLAY = 13;
+
+    private final HandlerThread thread;
+    private final Handler engine;
+
+    private final MutableLiveData<PlaybackSnapshot> snapshot =
+            new MutableLiveData<>(PlaybackSnapshot.INITIAL);
+    private final MutableLiveData<String> message = new MutableLiveData<>();
+
+    // --- Κατάσταση: μόνο από το thread της αναπαραγωγής ---
+    private final TextToSpeech tts;
+    private boolean ttsReady = false;
+
+    private final List<String> chunks = new ArrayList<>();
+    private PlaybackSnapshot.State state = PlaybackSnapshot.State.IDLE;
+    private int index = 0;
+    private boolean expectingMore = false;
+
+    // Κάθε QUEUE_FLUSH ανοίγει νέα "γενιά"· utterance IDs άλλης γενιάς είναι παλιά και αγνοούνται
+    private int generation = 0;
+    private String currentUtteranceId;
+
+    public StoryPlayer(Context context) {
+        thread = new HandlerThread("StoryPlayer");
+        thread.start();
+        engine = new Handler(thread.getLooper(), this::handleEvent);
+
+        tts = new TextToSpeech(context.getApplicationContext(), status ->
+                engine.obtainMessage(MSG_TTS_INIT, status, 0).sendToTarget());
+    }
+
+    public LiveData<PlaybackSnapshot> getSnapshot() {
+        return snapshot;
+    }
+
+    public LiveData<String> getMessage() {
+        return message;
+    }
+
+    public void consumeMessage() {
+        message.setValue(null);
+    }
+
+    // --- Δημόσιο API: απλώς βάζει events στην ουρά ---
+
+    public void setChunks(List<String> newChunks) {
+        engine.obtainMessage(MSG_SET_CHUNKS, new ArrayList<>(newChunks)).sendToTarget();
+    }
+
+    /** Προσθέτει chunks στο τέλος χωρίς να διακόψει την τρέχουσα αφήγηση. */
+    public void appendChunks(List<String> more) {
+        engine.obtainMessage(MSG_APPEND_CHUNKS, new ArrayList<>(more)).sendToTarget();
+    }
+
+    /** true όσο υπάρχουν τμήματα που δεν έχουν φτάσει ακόμα. */
+    public void setExpectingMore(boolean value) {
+        engine.obtainMessage(MSG_EXPECTING_MORE, value ? 1 : 0, 0).sendToTarget();
+    }
+
+    public void togglePlayPause() {
+        engine.sendEmptyMessage(MSG_TOGGLE);
+    }
+
+    /** Ξεκινάει από την αρχή των τρεχόντων chunks (autoplay της επόμενης ιστορίας). */
+    public void play() {
+        engine.sendEmptyMessage(MSG_PLAY);
+    }
+
+    public void next() {
+        engine.sendEmptyMessage(MSG_NEXT);
+    }
+
+    public void prev() {
+        engine.sendEmptyMessage(MSG_PREV);
+    }
+
+    public void pause() {
+        engine.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    public void stop() {
+        engine.sendEmptyMessage(MSG_STOP);
+    }
+
+    public void shutdown() {
+        engine.sendEmptyMessage(MSG_SHUTDOWN);
+    }
+
+    // --- State machine ---
+
+    @SuppressWarnings("unchecked")
+    private boolean handleEvent(Message msg) {
+        switch (msg.what) {
+            case MSG_TTS_INIT: onTtsInit(msg.arg1); break;
+            case MSG_UTTERANCE_DONE: onUtteranceDone((String) msg.obj); break;
+            case MSG_UTTERANCE_ERROR: onUtteranceError((String) msg.obj); break;
+            case MSG_SET_CHUNKS: onSetChunks((List<String>) msg.obj); break;
+            case MSG_APPEND_CHUNKS: onAppendChunks((List<String>) msg.obj); break;
+            case MSG_EXPECTING_MORE: onExpectingMore(msg.arg1 == 1); break;
+            case MSG_TOGGLE: onToggle(); break;
+            case MSG_PLAY: onPlay(); break;
+            case MSG_NEXT: onSeek(index + 1); break;
+            case MSG_PREV: onSeek(index - 1); break;
+            case MSG_PAUSE: onPause(); break;
+            case MSG_STOP: onStop(); break;
+            case MSG_SHUTDOWN: onShutdown(); return true;
+            default: return false;
+        }
+        publish();
+        return true;
+    }
+
+    private void onTtsInit(int status) {
+        if (status != TextToSpeech.SUCCESS) {
+            message.postValue("TTS init failed");
+            return;
+        }
+
+        int r = tts.setLanguage(Locale.US); // ιστορίες στα αγγλικά
+        ttsReady = (r != TextToSpeech.LANG_MISSING_DATA && r != TextToSpeech.LANG_NOT_SUPPORTED);
+
+        if (!ttsReady) {
+            message.postValue("TTS language not supported");
+            return;
+        }
+
+        // Τα callbacks έρχονται σε binder thread· τα κάνουμε κι αυτά events
+        tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override public void onStart(String utteranceId) { }
+
+            @Override
+            public void onDone(String utteranceId) {
+                engine.obtainMessage(MSG_UTTERANCE_DONE, utteranceId).sendToTarget();
+            }
+
+            @Override
+            public void onError(String utteranceId) {
+                engine.obtainMessage(MSG_UTTERANCE_ERROR, utteranceId).sendToTarget();
+            }
+        });
+    }
+
+    private void onUtteranceDone(String utteranceId) {
+        // Παλιό utterance (μετά από pause/next/prev/stop): δεν προχωράμε index
+        if (state != PlaybackSnapshot.State.PLAYING || !utteranceId.equals(currentUtteranceId)) return;
+
+        index++;
+        if (index < chunks.size()) {
+            speakCurrent(TextToSpeech.QUEUE_ADD);
+        } else if (expectingMore) {
+            // Το επόμενο τμήμα δεν έχει φτάσει ακόμα· συνεχίζουμε μόλις έρθει
+            state = PlaybackSnapshot.State.WAITING;
+        } else {
+            index = chunks.size() - 1;
+            state = PlaybackSnapshot.State.ENDED;
+        }
+    }
+
+    private void onUtteranceError(String utteranceId) {
+        if (!utteranceId.equals(currentUtteranceId)) return;
+
+        // Χωρίς onDone δεν θα προχωρήσει ποτέ· σταματάμε στο chunk που απέτυχε για να ξαναπατηθεί ▶
+        message.postValue("TTS error");
+        flush();
+        index = Math.max(0, Math.min(index, chunks.size() - 1));
+        state = PlaybackSnapshot.State.PAUSED;
+    }
+
+    private void onSetChunks(List<String> newChunks) {
+        flush();
+        chunks.clear();
+        chunks.addAll(newChunks);
+        index = 0;
+        expectingMore = false;
+        state = PlaybackSnapshot.State.IDLE;
+    }
+
+    private void onAppendChunks(List<String> more) {
+        // Μετά το setExpectingMore(false) η ιστορία έχει κλείσει· δεν προσθέτουμε πίσω από ENDED
+        if (!expectingMore) return;
+        chunks.addAll(more);
+
+        if (state == PlaybackSnapshot.State.WAITING && index < chunks.size()) {
+            state = PlaybackSnapshot.State.PLAYING;
+            speakCurrent(TextToSpeech.QUEUE_FLUSH);
+        }
+    }
+
+    private void onExpectingMore(boolean value) {
+        expectingMore = value;
+
+        // Δεν θα έρθει τίποτα άλλο: αν περιμέναμε, η αφήγηση τελείωσε
+        if (!value && state == PlaybackSnapshot.State.WAITING) {
+            index = Math.max(0, chunks.size() - 1);
+            state = PlaybackSnapshot.State.ENDED;
+        }
+    }
+
+    private void onToggle() {
+        // ⏸ pause· πριν από τον έλεγχο για chunks, γιατί στο WAITING μπορεί να μην έχει φτάσει κανένα
+        if (state == PlaybackSnapshot.State.PLAYING || state == PlaybackSnapshot.State.WAITING) {
+            onPause();
+            return;
+        }
+
+        if (!ttsReady || chunks.isEmpty()) {
+            message.postValue("TTS not ready / no text");
+            return;
+        }
+
+        // ▶ start / resume από εκεί που μείναμε
+        startFrom(index);
+    }
+
+    private void onPlay() {
+        if (!ttsReady) {
+            message.postValue("TTS not ready / no text");
+            return;
+        }
+
+        if (chunks.isEmpty() && expectingMore) {
+            // Το πρώτο τμήμα δεν έχει φτάσει ακόμα· ξεκινάμε μόλις έρθει
+            index = 0;
+            state = PlaybackSnapshot.State.WAITING;
+            return;
+        }
+        if (chunks.isEmpty()) return;
+
+        startFrom(0);
+    }
+
+    private void onSeek(int target) {
+        if (!ttsReady || chunks.isEmpty()) return;
+        startFrom(target);
+    }
+
+    private void onPause() {
+        if (state != PlaybackSnapshot.State.PLAYING && state != PlaybackSnapshot.State.WAITING) return;
+
+        flush();
+        index = Math.max(0, Math.min(index, chunks.size() - 1));
+        state = PlaybackSnapshot.State.PAUSED;
+    }
+
+    private void onStop() {
+        flush();
+        index = 0;
+        state = PlaybackSnapshot.State.IDLE;
+    }
+
+    private void onShutdown() {
+        flush();
+        tts.shutdown();
+        thread.quitSafely();
+    }
+
+    private void startFrom(int target) {
+        index = Math.max(0, Math.min(target, chunks.size() - 1));
+        state = PlaybackSnapshot.State.PLAYING;
+        speakCurrent(TextToSpeech.QUEUE_FLUSH);
+    }
+
+    private void speakCurrent(int queueMode) {
+        if (queueMode == TextToSpeech.QUEUE_FLUSH) generation++;
+
+        // Ντετερμινιστικό ID: γενιά + θέση, χωρίς ρολόι
+        currentUtteranceId = generation + ":" + index;
+        tts.speak(chunks.get(index), queueMode, null, currentUtteranceId);
+    }
+
+    /** Σταματάει ό,τι παίζει και ακυρώνει τα utterance IDs που εκκρεμούν. */
+    private void flush() {
+        generation++;
+        currentUtteranceId = null;
+        tts.stop();
+    }
+
+    private void publish() {
+        snapshot.postValue(new PlaybackSnapshot(state, ttsReady, index, chunks.size(), expectingMore));
+    }
+}
@@ -0,0 +1,93 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.bumptech.glide.Glide;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Κατεβάζει στο background το κείμενο και την εικόνα των ιστοριών που επέλεξε
+ * ο {@link StoryPrefetcher}, ώστε το άνοιγμά τους να μη χρειάζεται δίκτυο.
+ */
+public class StoryPrefetchWorker extends Worker {
+
+    static final String KEY_STORY_IDS = "storyIds";
+
+    private static final long FETCH_TIMEOUT_SEC = 30;
+
+    public StoryPrefetchWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String[] storyIds = getInputData().getStringArray(KEY_STORY_IDS);
+        if (storyIds == null || storyIds.length == 0) return Result.success();
+
+        Context context = getApplicationContext();
+        PrefetchCache.retainOnly(context, new HashSet<>(Arrays.asList(storyIds)));
+
+        StoryRepository repository = StoryRepository.get(context);
+        boolean failed = false;
+
+        for (String storyId : storyIds) {
+            if (isStopped()) return Result.retry();
+            if (PrefetchCache.isFresh(context, storyId)) continue;
+
+            try {
+                // Αν ο κατάλογος την έχει ήδη φέρει στη μνήμη, δεν την ξανακατεβάζουμε·
+                // τη γράφουμε όμως στον δίσκο για να επιζήσει αν σκοτωθεί η διεργασία
+                Story story = repository.peek(storyId);
+                if (story == null) {
+                    DataSnapshot snapshot = Tasks.await(
+                            repository.storiesRef().child(storyId).get(),
+                            FETCH_TIMEOUT_SEC, TimeUnit.SECONDS);
+
+                    story = snapshot.getValue(Story.class);
+                    if (story == null) continue;
+                    story.id = storyId;
+                }
+
+                // Η εικόνα μπαίνει στη disk cache του Glide, την ίδια που χρησιμοποιεί το StoryActivity
+                if (story.imageUrl != null && !story.imageUrl.isEmpty()) {
+                    Glide.with(context)
+                            .downloadOnly()
+                            .load(story.imageUrl)
+                            .submit()
+                            .get(FETCH_TIMEOUT_SEC, TimeUnit.SECONDS);
+                }
+
+                // Για ιστορίες σε τμήματα αρκεί το πρώτο τμήμα: η αφήγηση ξεκινάει
+                // από αυτό και τα υπόλοιπα έρχονται από το δίκτυο όσο παίζει
+                if (story.segmentCount > 0
+                        && PrefetchCache.readSegment(context, storyId, 0) == null) {
+                    DataSnapshot first = Tasks.await(
+                            repository.segmentsRef(storyId).child("0").get(),
+                            FETCH_TIMEOUT_SEC, TimeUnit.SECONDS);
+                    String text = first.getValue(String.class);
+                    if (text != null) PrefetchCache.writeSegment(context, storyId, 0, text);
+                }
+
+                PrefetchCache.write(context, story);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.retry();
+            } catch (Exception e) {
+                // Συνεχίζουμε με τις υπόλοιπες· θα ξαναδοκιμάσουμε αργότερα
+                failed = true;
+            }
+        }
+
+        return failed ? Result.retry() : Result.success();
+    }
+}
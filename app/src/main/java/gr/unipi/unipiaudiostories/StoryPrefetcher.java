@@ -0,0 +1,105 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Διαλέγει τις ιστορίες που είναι πιο πιθανό να ανοίξει ο χρήστης και
+ * προγραμματίζει το κατέβασμά τους όταν υπάρχει Wi-Fi και αρκετή μπαταρία.
+ */
+public final class StoryPrefetcher {
+
+    static final int MAX_PREFETCH = 3;
+
+    static final String WORK_NAME = "story_prefetch";
+
+    // Τα tests μέτρησης δικτύου το κλείνουν, για να μη μετράνε την κίνηση του worker
+    private static volatile boolean enabled = true;
+
+    private StoryPrefetcher() { }
+
+    @VisibleForTesting
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static void schedule(Context context, List<Story> catalog, String userId) {
+        if (!enabled) return;
+        if (userId == null) userId = "guest";
+
+        // Τα ίδια στατιστικά που γράφει το StoryViewModel.recordListen()
+        Map<String, ?> counts = context
+                .getSharedPreferences("Stats_" + userId, Context.MODE_PRIVATE)
+                .getAll();
+
+        List<Story> picked = pickCandidates(catalog, counts, MAX_PREFETCH);
+        if (picked.isEmpty()) return;
+
+        String[] ids = new String[picked.size()];
+        for (int i = 0; i < picked.size(); i++) ids[i] = picked.get(i).id;
+
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(StoryPrefetchWorker.class)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder()
+                        .putStringArray(StoryPrefetchWorker.KEY_STORY_IDS, ids)
+                        .build())
+                .build();
+
+        // REPLACE: κάθε νέα λίστα υποψηφίων ακυρώνει την προηγούμενη
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    /**
+     * Πρώτα οι ιστορίες που έχει ακούσει περισσότερες φορές (ξανακούγονται συχνά),
+     * και μετά οι πρώτες που δεν έχει ακούσει ακόμα, με τη σειρά του καταλόγου.
+     */
+    static List<Story> pickCandidates(List<Story> catalog, Map<String, ?> counts, int max) {
+        List<Story> listened = new ArrayList<>();
+        List<Story> unheard = new ArrayList<>();
+
+        for (Story s : catalog) {
+            if (s == null || s.id == null) continue;
+            if (listenCount(counts, s.title) > 0) listened.add(s);
+            else unheard.add(s);
+        }
+
+        // Η sort είναι stable, άρα στις ισοπαλίες κρατάμε τη σειρά του καταλόγου
+        Collections.sort(listened, (a, b) ->
+                Integer.compare(listenCount(counts, b.title), listenCount(counts, a.title)));
+
+        List<Story> picked = new ArrayList<>();
+        for (Story s : listened) {
+            if (picked.size() >= max) return picked;
+            picked.add(s);
+        }
+        for (Story s : unheard) {
+            if (picked.size() >= max) return picked;
+            picked.add(s);
+        }
+        return picked;
+    }
+
+    private static int listenCount(Map<String, ?> counts, String title) {
+        if (title == null) return 0;
+        Object v = counts.get(title);
+        return (v instanceof Integer) ? (Integer) v : 0;
+    }
+}
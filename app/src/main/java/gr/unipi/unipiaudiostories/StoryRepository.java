@@ -0,0 +1,361 @@
+package gr.unipi.unipiaudiostories;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ServerValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ενιαίο σημείο πρόσβασης στις ιστορίες για όλη την εφαρμογή.
+ * Κρατάει το μοναδικό FirebaseDatabase (με disk persistence), μια LRU cache
+ * με τις ιστορίες που έχουν ήδη κατέβει και ενώνει ταυτόχρονα αιτήματα για το ίδιο storyId.
+ * Τα callbacks καλούνται πάντα στο main thread.
+ */
+public final class StoryRepository {
+
+    public interface StoryCallback {
+        /** story == null σημαίνει ότι η ιστορία δεν υπάρχει. */
+        void onStory(Story story);
+
+        void onError(String message);
+    }
+
+    public interface SegmentCallback {
+        void onSegment(String text);
+
+        void onError(String message);
+    }
+
+    public interface CatalogCallback {
+        void onCatalog(List<Story> stories);
+
+        void onError(String message);
+    }
+
+    // Το όνομα του instance είναι και το namespace του emulator (βλ. EmulatorCatalog)
+    static final String RTDB_INSTANCE = "unipiaudiostories-f7609-default-rtdb";
+    private static final String RTDB_URL =
+            "https://" + RTDB_INSTANCE + ".europe-west1.firebasedatabase.app";
+
+    // Όριο της LRU σε χαρακτήρες κειμένου (~2MB σε UTF-16)
+    private static final int MAX_CACHED_CHARS = 1024 * 1024;
+
+    private static StoryRepository instance;
+
+    // Ρυθμίζεται μόνο από τα instrumented tests (Firebase emulator)
+    private static String emulatorHost;
+    private static int emulatorPort;
+
+    private final Context appContext;
+    private final FirebaseDatabase db;
+    private final LruCache<String, Story> memory;
+    // "storyId/index" -> κείμενο τμήματος, για ιστορίες με segmentCount > 0
+    private final LruCache<String, String> segments;
+
+    // storyId -> callbacks που περιμένουν το ίδιο fetch (μόνο από το main thread)
+    private final Map<String, List<StoryCallback>> inFlight = new HashMap<>();
+    // "storyId/index" -> callbacks που περιμένουν το ίδιο τμήμα (μόνο από το main thread)
+    private final Map<String, List<SegmentCallback>> segmentsInFlight = new HashMap<>();
+
+    // Η prefetch cache είναι αρχεία· διαβάζονται σε ένα background thread, ποτέ στο main
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Πόσα queries έφυγαν προς τη βάση (όχι από μνήμη / δίσκο)
+    private final AtomicInteger networkReads = new AtomicInteger();
+
+    private StoryRepository(Context context) {
+        appContext = context.getApplicationContext();
+
+        db = FirebaseDatabase.getInstance(RTDB_URL);
+        // Πρέπει να γίνει πριν από οποιαδήποτε άλλη χρήση της βάσης, γι' αυτό μόνο εδώ
+        if (emulatorHost != null) {
+            // Χωρίς persistence, ώστε κάθε μέτρηση να δείχνει το πραγματικό κόστος δικτύου
+            db.useEmulator(emulatorHost, emulatorPort);
+        } else {
+            db.setPersistenceEnabled(true);
+        }
+
+        memory = new LruCache<String, Story>(MAX_CACHED_CHARS) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Story value) {
+                int len = value.text == null ? 0 : value.text.length();
+                return Math.max(1, len);
+            }
+        };
+        segments = new LruCache<String, String>(MAX_CACHED_CHARS) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull String value) {
+                return Math.max(1, value.length());
+            }
+        };
+    }
+
+    public static synchronized StoryRepository get(Context context) {
+        if (instance == null) instance = new StoryRepository(context);
+        return instance;
+    }
+
+    /** Για τα tests: στέλνει όλη την κίνηση στον Firebase emulator. Πριν από το πρώτο get(). */
+    @VisibleForTesting
+    public static synchronized void useEmulator(String host, int port) {
+        if (instance != null) {
+            throw new IllegalStateException("useEmulator() must be called before get()");
+        }
+        emulatorHost = host;
+        emulatorPort = port;
+    }
+
+    @VisibleForTesting
+    public int getNetworkReads() {
+        return networkReads.get();
+    }
+
+    /** Αδειάζει τη μνήμη (π.χ. σε χαμηλή μνήμη ή για μέτρηση "κρύου" ανοίγματος). */
+    public void clearMemory() {
+        memory.evictAll();
+        segments.evictAll();
+    }
+
+    public DatabaseReference storiesRef() {
+        return db.getReference("stories");
+    }
+
+    public DatabaseReference segmentsRef(String storyId) {
+        return db.getReference("storySegments").child(storyId);
+    }
+
+    /** Ιστορία από τη μνήμη, αν υπάρχει, χωρίς κανένα I/O. */
+    public Story peek(String storyId) {
+        return memory.get(storyId);
+    }
+
+    public void put(Story story) {
+        if (story != null && story.id != null) memory.put(story.id, story);
+    }
+
+    /**
+     * Μία σελίδα του καταλόγου, ταξινομημένη / φιλτραρισμένη στον server.
+     * after == null για την πρώτη σελίδα, αλλιώς η τελευταία ιστορία της προηγούμενης.
+     */
+    public void loadCatalogPage(CatalogQuery query, Story after, int pageSize,
+                                CatalogCallback callback) {
+        if (after == null) loadCatalogPage(query, null, null, pageSize, callback);
+        else loadCatalogPage(query, query.valueOf(after), after.id, pageSize, callback);
+    }
+
+    /**
+     * Όπως το παραπάνω, με τον cursor ως (τιμή πεδίου ταξινόμησης, κλειδί) της τελευταίας ιστορίας.
+     * afterKey == null για την πρώτη σελίδα. Χρήσιμο όταν η ίδια η ιστορία δεν είναι διαθέσιμη.
+     */
+    public void loadCatalogPage(CatalogQuery query, Object afterValue, String afterKey,
+                                int pageSize, CatalogCallback callback) {
+        networkReads.incrementAndGet();
+        // get() ρωτάει πρώτα τον server και πέφτει στην cache μόνο offline·
+        // ένας single-value listener με persistence θα έδινε την παλιά cache
+        buildPageQuery(query, afterValue, afterKey, pageSize).get()
+                .addOnSuccessListener(snapshot -> {
+                    List<Story> stories = new ArrayList<>();
+                    for (DataSnapshot s : snapshot.getChildren()) {
+                        Story story = s.getValue(Story.class);
+                        if (story == null) continue;
+
+                        story.id = s.getKey();
+                        stories.add(story);
+                        // Ο κατάλογος έχει ήδη τα κείμενα, άρα το άνοιγμα μιας ιστορίας δεν θέλει νέο fetch
+                        put(story);
+                    }
+                    // Το limitToLast φέρνει αύξουσα σειρά· για φθίνουσα την αντιστρέφουμε
+                    if (query.descending) Collections.reverse(stories);
+                    callback.onCatalog(stories);
+                })
+                .addOnFailureListener(e -> callback.onError(e.getMessage()));
+    }
+
+    private Query buildPageQuery(CatalogQuery query, Object afterValue, String afterKey,
+                                 int pageSize) {
+        if (query.field == null) {
+            Query q = storiesRef().orderByKey();
+            if (afterKey != null) q = q.startAfter(afterKey);
+            return q.limitToFirst(pageSize);
+        }
+
+        Query q = storiesRef().orderByChild(query.field);
+
+        if (query.filterValue != null) {
+            // Ισότητα: [value, value], και μετά την τελευταία ιστορία (κατά κλειδί) της σελίδας
+            q = (afterKey == null)
+                    ? startAt(q, query.filterValue)
+                    : startAfter(q, query.filterValue, afterKey);
+            return endAt(q, query.filterValue).limitToFirst(pageSize);
+        }
+
+        if (query.descending) {
+            if (afterKey != null) q = endBefore(q, afterValue, afterKey);
+            return q.limitToLast(pageSize);
+        }
+
+        if (afterKey != null) q = startAfter(q, afterValue, afterKey);
+        return q.limitToFirst(pageSize);
+    }
+
+    // Η RTDB έχει ξεχωριστά overloads για αριθμούς και strings· null = παιδιά χωρίς τιμή
+    private static Query startAt(Query q, Object value) {
+        if (value instanceof Number) return q.startAt(((Number) value).doubleValue());
+        return q.startAt((String) value);
+    }
+
+    private static Query endAt(Query q, Object value) {
+        if (value instanceof Number) return q.endAt(((Number) value).doubleValue());
+        return q.endAt((String) value);
+    }
+
+    private static Query startAfter(Query q, Object value, String key) {
+        if (value instanceof Number) return q.startAfter(((Number) value).doubleValue(), key);
+        return q.startAfter((String) value, key);
+    }
+
+    private static Query endBefore(Query q, Object value, String key) {
+        if (value instanceof Number) return q.endBefore(((Number) value).doubleValue(), key);
+        return q.endBefore((String) value, key);
+    }
+
+    /** Μετράει μία ακρόαση στον server (για την ταξινόμηση κατά δημοτικότητα). */
+    public void recordListen(String storyId) {
+        storiesRef().child(storyId).child(CatalogQuery.FIELD_LISTENS)
+                .setValue(ServerValue.increment(1));
+    }
+
+    /**
+     * Μνήμη → prefetch cache στον δίσκο → δίκτυο.
+     * Αν υπάρχει ήδη αίτημα σε εξέλιξη για το ίδιο storyId (δίσκος ή δίκτυο),
+     * το callback απλώς μπαίνει στην ουρά του.
+     */
+    public void getStory(String storyId, StoryCallback callback) {
+        Story hit = memory.get(storyId);
+        if (hit != null) {
+            callback.onStory(hit);
+            return;
+        }
+
+        List<StoryCallback> waiting = inFlight.get(storyId);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        inFlight.put(storyId, waiting);
+
+        // Το διάβασμα του αρχείου γίνεται εκτός main thread· το αποτέλεσμα γυρνάει στο main
+        diskExecutor.execute(() -> {
+            Story prefetched = PrefetchCache.read(appContext, storyId);
+            mainHandler.post(() -> {
+                if (prefetched == null) {
+                    fetchStory(storyId);
+                    return;
+                }
+                put(prefetched);
+                List<StoryCallback> done = inFlight.remove(storyId);
+                if (done == null) return;
+                for (StoryCallback cb : done) cb.onStory(prefetched);
+            });
+        });
+    }
+
+    private void fetchStory(String storyId) {
+        networkReads.incrementAndGet();
+
+        storiesRef().child(storyId).get()
+                .addOnSuccessListener(snapshot -> {
+                    Story story = snapshot.getValue(Story.class);
+                    if (story != null) {
+                        story.id = storyId;
+                        put(story);
+                    }
+                    List<StoryCallback> done = inFlight.remove(storyId);
+                    if (done == null) return;
+                    for (StoryCallback cb : done) cb.onStory(story);
+                })
+                .addOnFailureListener(e -> {
+                    List<StoryCallback> done = inFlight.remove(storyId);
+                    if (done == null) return;
+                    for (StoryCallback cb : done) cb.onError(e.getMessage());
+                });
+    }
+
+    /**
+     * Ένα τμήμα μιας μεγάλης ιστορίας: μνήμη → prefetch cache → δίκτυο.
+     * Όπως στο getStory, ταυτόχρονα αιτήματα για το ίδιο τμήμα μοιράζονται ένα fetch.
+     */
+    public void getSegment(String storyId, int index, SegmentCallback callback) {
+        String key = storyId + "/" + index;
+
+        String hit = segments.get(key);
+        if (hit != null) {
+            callback.onSegment(hit);
+            return;
+        }
+
+        List<SegmentCallback> waiting = segmentsInFlight.get(key);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        segmentsInFlight.put(key, waiting);
+
+        diskExecutor.execute(() -> {
+            String prefetched = PrefetchCache.readSegment(appContext, storyId, index);
+            mainHandler.post(() -> {
+                if (prefetched == null) {
+                    fetchSegment(storyId, index);
+                    return;
+                }
+                segments.put(key, prefetched);
+                List<SegmentCallback> done = segmentsInFlight.remove(key);
+                if (done == null) return;
+                for (SegmentCallback cb : done) cb.onSegment(prefetched);
+            });
+        });
+    }
+
+    private void fetchSegment(String storyId, int index) {
+        String key = storyId + "/" + index;
+
+        networkReads.incrementAndGet();
+        segmentsRef(storyId).child(String.valueOf(index)).get()
+                .addOnSuccessListener(snapshot -> {
+                    String text = snapshot.getValue(String.class);
+                    if (text == null) text = "";
+                    segments.put(key, text);
+                    List<SegmentCallback> done = segmentsInFlight.remove(key);
+                    if (done == null) return;
+                    for (SegmentCallback cb : done) cb.onSegment(text);
+                })
+                .addOnFailureListener(e -> {
+                    List<SegmentCallback> done = segmentsInFlight.remove(key);
+                    if (done == null) return;
+                    for (SegmentCallback cb : done) cb.onError(e.getMessage());
+                });
+    }
+}
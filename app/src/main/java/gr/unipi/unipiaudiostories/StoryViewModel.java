@@ -0,0 +1,468 @@
+package gr.unipi.unipiaudiostories;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+
+import com.bumptech.glide.Glide;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Κρατάει την ιστορία, τα chunks και τον {@link StoryPlayer} του StoryActivity,
+ * ώστε να επιζούν από recreation (περιστροφή, αλλαγή γλώσσας) χωρίς νέο fetch ή νέο TTS.
+ * Για μεγάλες ιστορίες (segmentCount > 0) η αφήγηση ξεκινάει με το πρώτο τμήμα
+ * και τα επόμενα κατεβαίνουν σταδιακά, λίγο πριν τα χρειαστεί ο player.
+ * Με autoplay, όσο παίζουν τα τελευταία chunks ετοιμάζεται η επόμενη ιστορία της ουράς
+ * (κείμενο, chunks, εικόνα), ώστε να ξεκινήσει χωρίς κενό.
+ */
+public class StoryViewModel extends AndroidViewModel {
+
+    // Πόσα τμήματα μπροστά από αυτό που παίζει κρατάμε ήδη κατεβασμένα
+    static final int SEGMENT_LOOKAHEAD = 2;
+    // Πόσα chunks πριν το τέλος αρχίζουμε να ετοιμάζουμε την επόμενη ιστορία
+    static final int NEXT_STORY_LOOKAHEAD_CHUNKS = 3;
+
+    private static final String PREFS_SETTINGS = "settings";
+    private static final String KEY_AUTOPLAY = "autoplay";
+
+    private final StoryPlayer player;
+    // Η θέση του player καθορίζει πόσα τμήματα μπροστά κατεβάζουμε και πότε ετοιμάζουμε την επόμενη
+    private final Observer<PlaybackSnapshot> snapshotObserver = this::onSnapshot;
+
+    private final MutableLiveData<Story> story = new MutableLiveData<>();
+    private final MutableLiveData<String> body = new MutableLiveData<>();
+    private final MutableLiveData<String> error = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> notFound = new MutableLiveData<>(false);
+    private final MutableLiveData<Boolean> autoplay = new MutableLiveData<>(false);
+
+    private String loadedStoryId;
+    private String userId;
+
+    // Autoplay: ουρά ιστοριών (σειρά του καταλόγου) και η επόμενη, έτοιμη από πριν
+    private final List<String> queue = new ArrayList<>();
+    private int queuePosition = -1;
+    // Όταν η ουρά τελειώνει, φέρνουμε την επόμενη σελίδα του ίδιου καταλόγου
+    private CatalogQuery catalogQuery;
+    // Cursor της επόμενης σελίδας: τιμή ταξινόμησης + κλειδί της τελευταίας ιστορίας της ουράς
+    private Object cursorValue;
+    private String cursorKey;
+    private boolean catalogEnd = false;
+    private boolean extendingQueue = false;
+    private Story preparedNext;
+    private List<String> preparedChunks;
+    private boolean preparingNext = false;
+    private boolean advancing = false;
+    // Ο player δημοσιεύει snapshot σε κάθε event· προχωράμε μόνο στη μετάβαση σε ENDED
+    private PlaybackSnapshot.State lastState = PlaybackSnapshot.State.IDLE;
+    // Όσο το Activity δεν φαίνεται δεν ξεκινάει καμία ιστορία μόνη της
+    private boolean screenStopped = false;
+
+    // Segmented streaming state
+    private Story segmentedStory;
+    private int nextSegment = 0;
+    private int playingSegment = 0;
+    private boolean fetchingSegment = false;
+    // Ένα τμήμα απέτυχε οριστικά: η ιστορία κόβεται εκεί, χωρίς νέες προσπάθειες
+    private boolean segmentFailed = false;
+    private final StringBuilder bodyText = new StringBuilder();
+    private int chunkCount = 0;
+    // Ο δείκτης του πρώτου chunk κάθε τμήματος που έχει φτάσει
+    private final List<Integer> segmentFirstChunk = new ArrayList<>();
+
+    public StoryViewModel(@NonNull Application application) {
+        super(application);
+        player = new StoryPlayer(application);
+        player.getSnapshot().observeForever(snapshotObserver);
+
+        autoplay.setValue(application
+                .getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE)
+                .getBoolean(KEY_AUTOPLAY, false));
+    }
+
+    public StoryPlayer getPlayer() {
+        return player;
+    }
+
+    public LiveData<Story> getStory() {
+        return story;
+    }
+
+    /** Το κείμενο που έχει φτάσει μέχρι τώρα (όλο, ή τα τμήματα που έχουν κατέβει). */
+    public LiveData<String> getBody() {
+        return body;
+    }
+
+    public LiveData<String> getError() {
+        return error;
+    }
+
+    public void consumeError() {
+        error.setValue(null);
+    }
+
+    public LiveData<Boolean> isNotFound() {
+        return notFound;
+    }
+
+    public LiveData<Boolean> isAutoplay() {
+        return autoplay;
+    }
+
+    /** Από το onStop του Activity: παύση και ακύρωση ενός autoplay που περιμένει fetch. */
+    public void onScreenStopped() {
+        screenStopped = true;
+        advancing = false;
+        player.pause();
+    }
+
+    public void onScreenStarted() {
+        screenStopped = false;
+    }
+
+    public void toggleAutoplay() {
+        boolean value = !Boolean.TRUE.equals(autoplay.getValue());
+        autoplay.setValue(value);
+        getApplication().getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE)
+                .edit().putBoolean(KEY_AUTOPLAY, value).apply();
+    }
+
+    /**
+     * Φορτώνει την ιστορία μόνο την πρώτη φορά· σε recreation δεν κάνει τίποτα
+     * (ούτε αν στο μεταξύ το autoplay έχει προχωρήσει σε άλλη ιστορία).
+     */
+    public void load(String storyId, String userId, List<String> storyQueue,
+                     CatalogQuery query, Object queueCursor) {
+        if (loadedStoryId != null) return;
+        loadedStoryId = storyId;
+        this.userId = userId;
+
+        queue.clear();
+        if (storyQueue != null) queue.addAll(storyQueue);
+        queuePosition = queue.indexOf(storyId);
+        catalogQuery = query;
+        cursorValue = queueCursor;
+        cursorKey = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+        catalogEnd = query == null || cursorKey == null;
+
+        StoryRepository.get(getApplication()).getStory(storyId, new StoryRepository.StoryCallback() {
+            @Override
+            public void onStory(Story loaded) {
+                if (loaded == null) {
+                    notFound.setValue(true);
+                    return;
+                }
+                show(loaded, null, false);
+            }
+
+            @Override
+            public void onError(String message) {
+                // Επιτρέπουμε νέα προσπάθεια στην επόμενη δημιουργία του Activity
+                loadedStoryId = null;
+                error.setValue("Failed to load story: " + message);
+            }
+        });
+    }
+
+    /** prepared == null: τα chunks φτιάχνονται εδώ (ή έρχονται από τα τμήματα). */
+    private void show(Story loaded, List<String> prepared, boolean autoStart) {
+        recordListen(userId, loaded.title);
+        StoryRepository.get(getApplication()).recordListen(loaded.id);
+        story.setValue(loaded);
+
+        boolean hasText = loaded.text != null && !loaded.text.trim().isEmpty();
+        if (loaded.segmentCount > 0 && !hasText) {
+            startSegments(loaded);
+        } else {
+            segmentedStory = null;
+            segmentFailed = false;
+            player.setChunks(prepared != null ? prepared : buildChunks(loaded.text));
+            body.setValue(loaded.text);
+        }
+
+        // Τα events εκτελούνται με τη σειρά, άρα το play() βλέπει ήδη τα νέα chunks
+        if (autoStart) player.play();
+    }
+
+    // --- Autoplay ---
+    private void onSnapshot(PlaybackSnapshot snap) {
+        onPosition(snap.index);
+
+        boolean becameEnded = snap.state == PlaybackSnapshot.State.ENDED
+                && lastState != PlaybackSnapshot.State.ENDED;
+        lastState = snap.state;
+        // Ο χρήστης ξανάπαιξε ή σταμάτησε· δεν περιμένουμε πια για να αλλάξουμε ιστορία
+        if (snap.state != PlaybackSnapshot.State.ENDED) advancing = false;
+
+        if (!Boolean.TRUE.equals(autoplay.getValue())) return;
+
+        boolean nearEnd = snap.total > 0 && !snap.expectingMore
+                && snap.index >= snap.total - NEXT_STORY_LOOKAHEAD_CHUNKS;
+        if (snap.isActive() && nearEnd) prepareNext();
+
+        // Αν κόπηκε από σφάλμα τμήματος δεν τελείωσε στ' αλήθεια· δεν πάμε στην επόμενη
+        if (becameEnded && !segmentFailed) advance();
+    }
+
+    private String nextStoryId() {
+        if (queuePosition < 0 || queuePosition + 1 >= queue.size()) return null;
+        return queue.get(queuePosition + 1);
+    }
+
+    /** Κατεβάζει και κόβει σε chunks την επόμενη ιστορία και φέρνει την εικόνα της στην cache. */
+    private void prepareNext() {
+        String nextId = nextStoryId();
+        if (nextId == null) {
+            extendQueue();
+            return;
+        }
+        if (preparingNext || preparedNext != null) return;
+        preparingNext = true;
+
+        StoryRepository repository = StoryRepository.get(getApplication());
+        repository.getStory(nextId, new StoryRepository.StoryCallback() {
+            @Override
+            public void onStory(Story next) {
+                preparingNext = false;
+                // Στο μεταξύ άλλαξε η θέση στην ουρά
+                if (!nextId.equals(nextStoryId())) return;
+
+                if (next == null) {
+                    // Σβήστηκε από τον κατάλογο· την παραλείπουμε και ετοιμάζουμε την επόμενη
+                    queue.remove(queuePosition + 1);
+                    if (advancing) advance();
+                    else prepareNext();
+                    return;
+                }
+
+                boolean hasText = next.text != null && !next.text.trim().isEmpty();
+                if (next.segmentCount > 0 && !hasText) {
+                    // Αρκεί το πρώτο τμήμα στη μνήμη· τα υπόλοιπα έρχονται όσο παίζει
+                    repository.getSegment(next.id, 0, new StoryRepository.SegmentCallback() {
+                        @Override public void onSegment(String text) { }
+
+                        @Override public void onError(String message) { }
+                    });
+                    preparedChunks = null;
+                } else {
+                    preparedChunks = buildChunks(next.text);
+                }
+
+                // Μόνο τα bytes στη disk cache, όπως ο prefetch worker· το StoryActivity κάνει
+                // centerCrop στο δικό του μέγεθος, άρα ένα decode εδώ δεν θα ξαναχρησιμοποιούνταν
+                if (next.imageUrl != null && !next.imageUrl.isEmpty()) {
+                    Context app = getApplication();
+                    Glide.with(app).downloadOnly().load(next.imageUrl).submit();
+                }
+                preparedNext = next;
+
+                // Αν η τρέχουσα τελείωσε πριν ετοιμαστεί η επόμενη, προχωράμε τώρα
+                if (advancing) advance();
+            }
+
+            @Override
+            public void onError(String message) {
+                preparingNext = false;
+                // Χωρίς look-ahead ξαναδοκιμάζει το επόμενο snapshot· αν όμως περιμέναμε
+                // για να προχωρήσουμε, το autoplay σταματάει εδώ και το λέμε στον χρήστη
+                if (!advancing) return;
+                advancing = false;
+                error.setValue("Failed to load story: " + message);
+            }
+        });
+    }
+
+    private void advance() {
+        if (screenStopped || !Boolean.TRUE.equals(autoplay.getValue())
+                || (nextStoryId() == null && !canExtendQueue())) {
+            advancing = false;
+            return;
+        }
+        advancing = true;
+
+        if (nextStoryId() == null) {
+            // Τελευταία της σελίδας· προχωράμε μόλις έρθει η επόμενη
+            extendQueue();
+            return;
+        }
+
+        if (preparedNext == null) {
+            // Η ιστορία ήταν πολύ μικρή για look-ahead· την ετοιμάζουμε τώρα
+            prepareNext();
+            return;
+        }
+
+        Story next = preparedNext;
+        List<String> chunks = preparedChunks;
+        preparedNext = null;
+        preparedChunks = null;
+        advancing = false;
+
+        queuePosition++;
+        loadedStoryId = next.id;
+        show(next, chunks, true);
+    }
+
+    private boolean canExtendQueue() {
+        return !catalogEnd && queuePosition >= 0 && queuePosition == queue.size() - 1;
+    }
+
+    /** Η ουρά ήταν μόνο οι σελίδες του MainActivity· συνεχίζουμε με την επόμενη σελίδα από τον server. */
+    private void extendQueue() {
+        if (!canExtendQueue() || extendingQueue) return;
+        extendingQueue = true;
+
+        // Ο cursor έρχεται από τον κατάλογο και όχι από getStory(), που μπορεί να δώσει
+        // αντίγραφο χωρίς το πεδίο ταξινόμησης και κοστίζει ένα read επιπλέον
+        StoryRepository.get(getApplication()).loadCatalogPage(catalogQuery, cursorValue, cursorKey,
+                CatalogViewModel.PAGE_SIZE, new StoryRepository.CatalogCallback() {
+                    @Override
+                    public void onCatalog(List<Story> page) {
+                        extendingQueue = false;
+                        int before = queue.size();
+                        for (Story s : page) {
+                            if (!queue.contains(s.id)) queue.add(s.id);
+                        }
+                        if (!page.isEmpty()) {
+                            Story last = page.get(page.size() - 1);
+                            cursorValue = catalogQuery.valueOf(last);
+                            cursorKey = last.id;
+                        }
+                        // Χωρίς νέες ιστορίες θα ζητούσαμε ξανά την ίδια σελίδα
+                        catalogEnd = page.size() < CatalogViewModel.PAGE_SIZE
+                                || queue.size() == before;
+
+                        if (advancing) advance();
+                        else if (nextStoryId() != null) prepareNext();
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        extendingQueue = false;
+                        if (!advancing) return;
+                        advancing = false;
+                        error.setValue("Failed to load story: " + message);
+                    }
+                });
+    }
+
+    // --- Segmented streaming ---
+    private void startSegments(Story loaded) {
+        segmentedStory = loaded;
+        nextSegment = 0;
+        playingSegment = 0;
+        fetchingSegment = false;
+        segmentFailed = false;
+        bodyText.setLength(0);
+        segmentFirstChunk.clear();
+        chunkCount = 0;
+
+        player.setChunks(new ArrayList<>());
+        player.setExpectingMore(true);
+        fetchNextSegment();
+    }
+
+    /** Κατεβάζει τα τμήματα με τη σειρά, ένα-ένα, μέχρι SEGMENT_LOOKAHEAD μπροστά από τον player. */
+    private void fetchNextSegment() {
+        Story target = segmentedStory;
+        if (target == null || fetchingSegment || segmentFailed) return;
+        if (nextSegment >= target.segmentCount) return;
+        if (nextSegment > playingSegment + SEGMENT_LOOKAHEAD) return;
+
+        fetchingSegment = true;
+        int index = nextSegment;
+
+        StoryRepository.get(getApplication()).getSegment(target.id, index,
+                new StoryRepository.SegmentCallback() {
+                    @Override
+                    public void onSegment(String text) {
+                        // Στο μεταξύ φορτώθηκε άλλη ιστορία
+                        if (segmentedStory != target) return;
+                        fetchingSegment = false;
+                        nextSegment = index + 1;
+
+                        List<String> more = buildChunks(text);
+                        segmentFirstChunk.add(chunkCount);
+                        chunkCount += more.size();
+                        player.appendChunks(more);
+                        if (nextSegment >= target.segmentCount) player.setExpectingMore(false);
+
+                        if (bodyText.length() > 0) bodyText.append("\n\n");
+                        bodyText.append(text);
+                        body.setValue(bodyText.toString());
+
+                        fetchNextSegment();
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        if (segmentedStory != target) return;
+                        fetchingSegment = false;
+                        // Οριστικό: αλλιώς το snapshot που ακολουθεί θα ξαναζητούσε το ίδιο τμήμα
+                        segmentFailed = true;
+                        // Η αφήγηση σταματάει στο τελευταίο τμήμα που έφτασε
+                        player.setExpectingMore(false);
+                        error.setValue("Failed to load story: " + message);
+                    }
+                });
+    }
+
+    private void onPosition(int chunkIndex) {
+        if (segmentedStory == null) return;
+
+        // Το τμήμα που παίζει = το τελευταίο που ξεκινάει πριν (ή στο) chunkIndex
+        int segment = 0;
+        for (int i = 0; i < segmentFirstChunk.size(); i++) {
+            if (segmentFirstChunk.get(i) <= chunkIndex) segment = i;
+            else break;
+        }
+        playingSegment = segment;
+        fetchNextSegment();
+    }
+
+    private void recordListen(String userId, String storyTitle) {
+        if (userId == null) userId = "guest"; // fallback
+
+        // Το όνομα του αρχείου είναι πλέον μοναδικό για τον χρήστη
+        SharedPreferences prefs = getApplication()
+                .getSharedPreferences("Stats_" + userId, Context.MODE_PRIVATE);
+
+        int currentCount = prefs.getInt(storyTitle, 0);
+        prefs.edit().putInt(storyTitle, currentCount + 1).apply();
+    }
+
+    // --- Chunking ---
+    static List<String> buildChunks(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null) return chunks;
+
+        // Split σε προτάσεις (απλό και αποτελεσματικό για demo)
+        // Κρατάμε το σημείο στίξης.
+        String cleaned = text.trim().replace("\n", " ").replaceAll("\\s+", " ");
+        if (cleaned.isEmpty()) return chunks;
+
+        String[] parts = cleaned.split("(?<=[.!?])\\s+");
+        for (String p : parts) {
+            String s = p.trim();
+            if (!s.isEmpty()) chunks.add(s);
+        }
+
+        // fallback: αν δεν έσπασε (π.χ. χωρίς τελείες)
+        if (chunks.isEmpty()) chunks.add(cleaned);
+        return chunks;
+    }
+
+    @Override
+    protected void onCleared() {
+        player.getSnapshot().removeObserver(snapshotObserver);
+        player.shutdown();
+        super.onCleared();
+    }
+}